@@ -0,0 +1,172 @@
+package com.axibase.statistics;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class keeps indexed double-valued data in memory while it is small
+ * and moves it to {@link CachedFileDoubleIndex} once its size exceeds threshold.
+ * The underlying file is not created for small data at all
+ */
+public class AdaptiveDoubleIndex extends BaseDoubleIndex implements AutoCloseable {
+    private static final int DEFAULT_THRESHOLD =
+            CachedFileDoubleIndex.DEFAULT_PAGE_SIZE * CachedFileDoubleIndex.DEFAULT_MAX_PAGES;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String path;
+    private int threshold, pageSize, maxPages;
+    private boolean compressed;
+
+    private double[] values;
+    private int length;
+    private CachedFileDoubleIndex fileIndex;
+
+    public AdaptiveDoubleIndex(String path) {
+        this(path, DEFAULT_THRESHOLD);
+    }
+
+    public AdaptiveDoubleIndex(String path, int threshold) {
+        this(path, threshold, CachedFileDoubleIndex.DEFAULT_PAGE_SIZE,
+                CachedFileDoubleIndex.DEFAULT_MAX_PAGES, false);
+    }
+
+    /**
+     * Creates a new AdaptiveDoubleIndex. The file is created only when data
+     * exceeds the threshold, if it exists then it is overwritten
+     *
+     * @param path       the path to underlying file of this index
+     * @param threshold  the maximum size of data in bytes kept in memory
+     * @param pageSize   the size of singe caching uint (page) of file index
+     * @param maxPages   the maximum number of pages that can be stored in memory for file index
+     * @param compressed whether pages of file index should be compressed on disk
+     */
+    public AdaptiveDoubleIndex(String path, int threshold, int pageSize, int maxPages, boolean compressed) {
+        this.path = path;
+        this.threshold = threshold;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.compressed = compressed;
+        values = new double[Math.min(INITIAL_CAPACITY, Math.max(1, threshold / DOUBLE_SIZE))];
+    }
+
+    /**
+     * Adds new value at the end of index. This changes the {@link #length() length}
+     *
+     * @param value the value to append
+     * @throws IndexAccessException is thrown if the new value could not be added
+     */
+    public void addValue(double value) throws IndexAccessException {
+        if (Double.isNaN(value))
+            return;
+
+        if (fileIndex == null && (long) (length + 1) * DOUBLE_SIZE > threshold)
+            spill();
+
+        if (fileIndex != null) {
+            fileIndex.addValue(value);
+        } else {
+            if (length == values.length)
+                values = Arrays.copyOf(values, Math.min(values.length * 2, threshold / DOUBLE_SIZE));
+            values[length] = value;
+        }
+        length++;
+    }
+
+    /**
+     * Completes insertion. This method should be called after all values inserted
+     * and before any element accessed
+     */
+    public void completeInsertion() throws IOException {
+        if (fileIndex != null)
+            fileIndex.completeInsertion();
+    }
+
+    /**
+     * Checks whether the data has been moved to file
+     *
+     * @return <code>true</code> if the data is stored in file
+     */
+    public boolean isSpilled() {
+        return fileIndex != null;
+    }
+
+    /**
+     * Closes and removes underlying file if it has been created
+     *
+     * @throws IOException if the file can't be closed or deleted
+     */
+    @Override
+    public void close() throws IOException {
+        values = null;
+        if (fileIndex != null)
+            fileIndex.close();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Moves values from memory to the new file index. If values can't be copied,
+     * the partial file is removed and values stay in memory
+     */
+    private void spill() throws IndexAccessException {
+        CachedFileDoubleIndex spilled;
+        try {
+            spilled = new CachedFileDoubleIndex(path, pageSize, maxPages, compressed);
+        } catch (IOException e) {
+            throw new IndexAccessException("Spill I/O error" + e.toString(), e);
+        }
+
+        try {
+            for (int i = 0; i < length; i++)
+                spilled.addValue(values[i]);
+        } catch (Throwable e) {
+            try {
+                spilled.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            throw e;
+        }
+
+        fileIndex = spilled;
+        values = null;
+    }
+
+    @Override
+    public double get(int index) throws IndexAccessException {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException();
+
+        if (fileIndex != null)
+            return fileIndex.get(index);
+        return values[index];
+    }
+
+    @Override
+    public void set(int index, double value) throws IndexAccessException {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException();
+
+        if (fileIndex != null)
+            fileIndex.set(index, value);
+        else
+            values[index] = value;
+    }
+
+    @Override
+    public void swap(int i, int j) throws IndexAccessException {
+        if (fileIndex != null) {
+            fileIndex.swap(i, j);
+            return;
+        }
+
+        if (i < 0 || i >= length || j < 0 || j >= length)
+            throw new IndexOutOfBoundsException();
+        double t = values[i];
+        values[i] = values[j];
+        values[j] = t;
+    }
+}
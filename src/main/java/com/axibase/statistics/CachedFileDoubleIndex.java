@@ -6,16 +6,28 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.file.Files;
+import java.util.Arrays;
 
 /**
  * This class stores indexed double-valued data on disk
- * and provides simple caching strategy for faster access
+ * and provides simple caching strategy for faster access.
+ * Only modified pages are written back on eviction
+ * <p>
+ * Pages can be optionally stored compressed. In this case a page is
+ * decompressed into cache on load and compressed on eviction, pages which
+ * don't compress are stored raw. Compressed pages have variable size, so their
+ * positions are tracked in offset table. Space for a page is allocated in slots
+ * of twice its compressed size rounded up to a sixteenth of page size,
+ * slots released by grown pages are reused
  */
 public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoCloseable {
-    private static final int DEFAULT_PAGE_SIZE = 1 << 16;
-    private static final int DEFAULT_MAX_PAGES = 10;
+    static final int DEFAULT_PAGE_SIZE = 1 << 16;
+    static final int DEFAULT_MAX_PAGES = 10;
+    private static final int INITIAL_TABLE_SIZE = 16;
+    private static final int SLOT_CLASSES = 16;
 
     private int pageSize, maxPages;
+    private boolean compressed, readOnly;
 
     private int length;
     private File indexPath;
@@ -27,10 +39,24 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
 
     private CacheNode head, tail;
 
+    private long[] pageOffsets;
+    private int[] pageLengths, pageCapacities;
+    private boolean[] pageRaw;
+    private long fileEnd = 0;
+    private int slotGranularity;
+    private long[][] freeSlots;
+    private int[] freeSlotCounts;
+    private PageCodec codec;
+    private byte[] compressionBuffer;
+
+    private long pagesRead = 0, pagesWritten = 0;
+    private long bytesRead = 0, bytesWritten = 0;
+
     class CacheNode {
         CacheNode next, prev;
         int index;
         long offset;
+        boolean dirty;
         byte[] data;
         ByteBuffer buffer;
         DoubleBuffer doubleBuffer;
@@ -49,10 +75,70 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
      * @param maxPages the maximum number of pages that can be stored in memory for this index
      */
     public CachedFileDoubleIndex(String path, int pageSize, int maxPages) throws IOException {
+        this(path, pageSize, maxPages, false);
+    }
+
+    /**
+     * Creates a new CachedFileDoubleIndex. The new file is created if it doesn't exist,
+     * otherwise the files is overwritten
+     *
+     * @param path       the path to underlying file of this index
+     * @param pageSize   the size of singe caching uint (page)
+     * @param maxPages   the maximum number of pages that can be stored in memory for this index
+     * @param compressed whether pages should be compressed on disk
+     */
+    public CachedFileDoubleIndex(String path, int pageSize, int maxPages, boolean compressed) throws IOException {
+        this(path, pageSize, maxPages, compressed, false);
+    }
+
+    private CachedFileDoubleIndex(String path, int pageSize, int maxPages, boolean compressed, boolean readOnly)
+            throws IOException {
         this.indexPath = new File(path);
-        indexFile = new RandomAccessFile(path, "rw");
+        indexFile = new RandomAccessFile(path, readOnly ? "r" : "rw");
         this.pageSize = pageSize;
         this.maxPages = maxPages;
+        this.compressed = compressed;
+        this.readOnly = readOnly;
+
+        if (compressed) {
+            pageOffsets = new long[INITIAL_TABLE_SIZE];
+            pageLengths = new int[INITIAL_TABLE_SIZE];
+            pageCapacities = new int[INITIAL_TABLE_SIZE];
+            pageRaw = new boolean[INITIAL_TABLE_SIZE];
+            slotGranularity = (pageSize + SLOT_CLASSES - 1) / SLOT_CLASSES;
+            freeSlots = new long[SLOT_CLASSES + 1][];
+            freeSlotCounts = new int[SLOT_CLASSES + 1];
+            codec = new PageCodec(pageSize);
+            compressionBuffer = new byte[pageSize];
+        }
+    }
+
+    public static CachedFileDoubleIndex openReadOnly(String path) throws IOException {
+        return openReadOnly(path, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Opens existing file of raw double values as read-only index. The file is opened
+     * for reading only and isn't removed on close, so it can reside on read-only storage.
+     * Values can't be added or modified
+     *
+     * @param path     the path to existing file with big-endian double values
+     * @param pageSize the size of singe caching uint (page)
+     * @param maxPages the maximum number of pages that can be stored in memory for this index
+     * @return the index ready for access
+     * @throws IOException if the file can't be opened or is too large
+     */
+    public static CachedFileDoubleIndex openReadOnly(String path, int pageSize, int maxPages) throws IOException {
+        CachedFileDoubleIndex index = new CachedFileDoubleIndex(path, pageSize, maxPages, false, true);
+        long count = index.indexFile.length() / DOUBLE_SIZE;
+        if (count > Integer.MAX_VALUE) {
+            index.indexFile.close();
+            throw new IOException("Too many values in " + path + ": " + count);
+        }
+
+        index.length = (int) count;
+        index.completeInsertion();
+        return index;
     }
 
     /**
@@ -62,6 +148,8 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
      * @throws IndexAccessException is thrown if the new value could not be added
      */
     public void addValue(double value) throws IndexAccessException {
+        if (readOnly)
+            throw new IndexAccessException("Index is read-only");
         if (!Double.isNaN(value)) {
             length++;
             set(length - 1, value);
@@ -73,8 +161,8 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
      * and before any element accessed
      */
     public void completeInsertion() throws IOException {
-        int size = length * DOUBLE_SIZE;
-        int pageCount = (size + pageSize) / pageSize;
+        long size = (long) length * DOUBLE_SIZE;
+        int pageCount = (int) ((size + pageSize) / pageSize);
         if (currentPage != null) {
             dropOutdated();
             currentPage = null;
@@ -83,14 +171,15 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
     }
 
     /**
-     * Closes and removes underlying file
+     * Closes and removes underlying file. The file of read-only index is kept
      *
      * @throws IOException if the file can't be closed or deleted
      */
     @Override
     public void close() throws IOException {
         indexFile.close();
-        Files.delete(indexPath.toPath());
+        if (!readOnly)
+            Files.delete(indexPath.toPath());
     }
 
     @Override
@@ -98,6 +187,42 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
         return length;
     }
 
+    /**
+     * Returns the number of pages loaded from disk since creation
+     *
+     * @return the number of loaded pages
+     */
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+    /**
+     * Returns the number of pages written to disk since creation
+     *
+     * @return the number of written pages
+     */
+    public long getPagesWritten() {
+        return pagesWritten;
+    }
+
+    /**
+     * Returns the number of bytes read from disk since creation
+     *
+     * @return the number of read bytes
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes written to disk since creation
+     *
+     * @return the number of written bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
     /**
      * Loads requested page in memory, unloads old pages
      * if <code>maxPages</code> limit is reached.
@@ -114,10 +239,17 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
         }
 
         page.index = pageIndex;
-        page.offset = pageIndex * pageSize;
+        page.offset = (long) pageIndex * pageSize;
 
-        indexFile.seek(page.offset);
-        indexFile.read(page.data);
+        if (compressed) {
+            readCompressed(page);
+        } else {
+            indexFile.seek(page.offset);
+            int read = indexFile.read(page.data);
+            bytesRead += Math.max(read, 0);
+        }
+        page.dirty = false;
+        pagesRead++;
         page.buffer = ByteBuffer.wrap(page.data);
         page.doubleBuffer = page.buffer.asDoubleBuffer();
 
@@ -166,7 +298,7 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
     }
 
     /**
-     * Remove old pages from cache
+     * Remove old pages from cache, writing them back if modified
      */
     private CacheNode dropOutdated() throws IOException {
         CacheNode out;
@@ -181,18 +313,124 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
         } else
             out = currentPage;
 
-        indexFile.seek(out.offset);
-        indexFile.write(out.data);
+        if (!out.dirty)
+            return out;
 
+        if (compressed) {
+            writeCompressed(out);
+        } else {
+            indexFile.seek(out.offset);
+            indexFile.write(out.data);
+            bytesWritten += out.data.length;
+        }
+        out.dirty = false;
+        pagesWritten++;
 
         return out;
     }
 
+    /**
+     * Reads and decompresses page using offset table
+     */
+    private void readCompressed(CacheNode page) throws IOException {
+        ensureTableCapacity(page.index);
+        int compressedLength = pageLengths[page.index];
+
+        if (compressedLength == 0) {
+            Arrays.fill(page.data, (byte) 0);
+            return;
+        }
+
+        indexFile.seek(pageOffsets[page.index]);
+        bytesRead += compressedLength;
+        if (pageRaw[page.index]) {
+            indexFile.readFully(page.data);
+        } else {
+            indexFile.readFully(compressionBuffer, 0, compressedLength);
+            codec.decode(compressionBuffer, compressedLength, page.data);
+        }
+    }
+
+    /**
+     * Compresses and writes page, or writes it raw if it doesn't compress.
+     * The page is written in place if it fits its slot, otherwise it is moved
+     * to a larger slot and the old one is released
+     */
+    private void writeCompressed(CacheNode page) throws IOException {
+        ensureTableCapacity(page.index);
+        int compressedLength = codec.encode(page.data, compressionBuffer);
+        boolean raw = compressedLength < 0;
+        if (raw)
+            compressedLength = pageSize;
+
+        if (compressedLength > pageCapacities[page.index]) {
+            releaseSlot(page.index);
+            allocateSlot(page.index, compressedLength);
+        }
+
+        indexFile.seek(pageOffsets[page.index]);
+        indexFile.write(raw ? page.data : compressionBuffer, 0, compressedLength);
+        bytesWritten += compressedLength;
+        pageLengths[page.index] = compressedLength;
+        pageRaw[page.index] = raw;
+    }
+
+    /**
+     * Assigns the page a free slot of sufficient size, or a new one at the end of file.
+     * The slot is twice as large as needed, so the page can grow in place while data is shuffled
+     */
+    private void allocateSlot(int pageIndex, int length) {
+        int slotClass = Math.min(SLOT_CLASSES, (length * 2 + slotGranularity - 1) / slotGranularity);
+
+        for (int c = slotClass; c <= SLOT_CLASSES; c++) {
+            if (freeSlotCounts[c] > 0) {
+                pageOffsets[pageIndex] = freeSlots[c][--freeSlotCounts[c]];
+                pageCapacities[pageIndex] = c * slotGranularity;
+                return;
+            }
+        }
+
+        pageOffsets[pageIndex] = fileEnd;
+        pageCapacities[pageIndex] = slotClass * slotGranularity;
+        fileEnd += pageCapacities[pageIndex];
+    }
+
+    /**
+     * Puts the slot of the page to free list of its size
+     */
+    private void releaseSlot(int pageIndex) {
+        int slotClass = pageCapacities[pageIndex] / slotGranularity;
+        if (slotClass == 0)
+            return;
+
+        if (freeSlots[slotClass] == null)
+            freeSlots[slotClass] = new long[INITIAL_TABLE_SIZE];
+        else if (freeSlotCounts[slotClass] == freeSlots[slotClass].length)
+            freeSlots[slotClass] = Arrays.copyOf(freeSlots[slotClass], freeSlotCounts[slotClass] * 2);
+
+        freeSlots[slotClass][freeSlotCounts[slotClass]++] = pageOffsets[pageIndex];
+        pageCapacities[pageIndex] = 0;
+    }
+
+    /**
+     * Grows offset table to hold the page with specified index
+     */
+    private void ensureTableCapacity(int pageIndex) {
+        if (pageIndex < pageOffsets.length)
+            return;
+
+        int newSize = Math.max(pageOffsets.length * 2, pageIndex + 1);
+        pageOffsets = Arrays.copyOf(pageOffsets, newSize);
+        pageLengths = Arrays.copyOf(pageLengths, newSize);
+        pageCapacities = Arrays.copyOf(pageCapacities, newSize);
+        pageRaw = Arrays.copyOf(pageRaw, newSize);
+    }
+
     /**
      * Get or load load requested page by index
      */
     private CacheNode getPageFor(int i) throws IOException {
-        int needPage = i * DOUBLE_SIZE / pageSize;
+        int needPage = (int) ((long) i * DOUBLE_SIZE / pageSize);
         touchPage(needPage);
 
         if (pages == null)
@@ -217,9 +455,13 @@ public class CachedFileDoubleIndex extends BaseDoubleIndex implements AutoClosea
     public void set(int index, double value) throws IndexAccessException {
         if (index < 0 || index >= length)
             throw new IndexOutOfBoundsException();
+        if (readOnly)
+            throw new IndexAccessException("Index is read-only");
 
         try {
-            getPageFor(index).doubleBuffer.put(index % (pageSize / DOUBLE_SIZE), value);
+            CacheNode page = getPageFor(index);
+            page.doubleBuffer.put(index % (pageSize / DOUBLE_SIZE), value);
+            page.dirty = true;
         } catch (IOException e) {
             throw new IndexAccessException("Set value I/O error" + e.toString(), e);
         }
@@ -0,0 +1,194 @@
+package com.axibase.statistics;
+
+/**
+ * This class compresses pages of double values independently of their order
+ * <p>
+ * Bytes of values are shuffled first, so the i-th bytes of all values form
+ * a contiguous plane. Sign, exponent and high mantissa bytes of similar values
+ * are alike, and low mantissa bytes of values with limited precision are zero,
+ * so the planes contain long runs and repeats. Then the planes are compressed
+ * with LZ-style encoding. Each sequence is a token byte, holding literals length
+ * in upper half and match length in lower half, followed by extra literals length
+ * bytes, literals, 2-byte match offset and extra match length bytes.
+ * The last sequence has literals only
+ */
+class PageCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = (1 << 16) - 1;
+    private static final int HASH_BITS = 12;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int NIBBLE_MASK = 0x0F;
+
+    private final int pageSize;
+    private final byte[] shuffled;
+    private final int[] hashTable = new int[1 << HASH_BITS];
+
+    /**
+     * Creates codec for pages of specified size
+     *
+     * @param pageSize the size of uncompressed page in bytes
+     */
+    PageCodec(int pageSize) {
+        this.pageSize = pageSize;
+        this.shuffled = new byte[pageSize];
+    }
+
+    /**
+     * Compresses page. Compression is abandoned if the result
+     * is not smaller than the page, then the page should be stored raw
+     *
+     * @param page the page with big-endian double values
+     * @param out  the buffer for compressed data, at least page size long
+     * @return the length of compressed data, or -1 if page is incompressible
+     */
+    int encode(byte[] page, byte[] out) {
+        shuffle(page);
+
+        for (int i = 0; i < hashTable.length; i++)
+            hashTable[i] = -1;
+
+        int position = 0, anchor = 0, i = 0, misses = 0;
+        int limit = pageSize - MIN_MATCH;
+
+        while (i <= limit) {
+            int sequence = readInt(shuffled, i);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int reference = hashTable[hash];
+            hashTable[hash] = i;
+
+            if (reference < 0 || i - reference > MAX_OFFSET || readInt(shuffled, reference) != sequence) {
+                i += 1 + (misses++ >>> SKIP_TRIGGER);
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (i + matchLength < pageSize && shuffled[reference + matchLength] == shuffled[i + matchLength])
+                matchLength++;
+
+            position = writeSequence(out, position, anchor, i - anchor, i - reference, matchLength);
+            if (position < 0)
+                return -1;
+
+            i += matchLength;
+            anchor = i;
+            misses = 0;
+        }
+
+        if (anchor < pageSize)
+            position = writeSequence(out, position, anchor, pageSize - anchor, 0, 0);
+        return position;
+    }
+
+    /**
+     * Decompresses page
+     *
+     * @param in     the buffer with compressed data
+     * @param length the length of compressed data
+     * @param page   the page to fill with big-endian double values
+     */
+    void decode(byte[] in, int length, byte[] page) {
+        int position = 0, target = 0;
+
+        while (position < length) {
+            int token = in[position++] & 0xFF;
+
+            int literalsLength = token >>> 4;
+            if (literalsLength == NIBBLE_MASK) {
+                int b;
+                do {
+                    b = in[position++] & 0xFF;
+                    literalsLength += b;
+                } while (b == 0xFF);
+            }
+            System.arraycopy(in, position, shuffled, target, literalsLength);
+            position += literalsLength;
+            target += literalsLength;
+
+            if (position >= length)
+                break;
+
+            int offset = (in[position] & 0xFF) << 8 | (in[position + 1] & 0xFF);
+            position += 2;
+
+            int matchLength = token & NIBBLE_MASK;
+            if (matchLength == NIBBLE_MASK) {
+                int b;
+                do {
+                    b = in[position++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+
+            for (int j = 0; j < matchLength; j++, target++)
+                shuffled[target] = shuffled[target - offset];
+        }
+
+        unshuffle(page);
+    }
+
+    /**
+     * Writes single sequence, checking that the output stays smaller than the page
+     *
+     * @return the new position in output, or -1 if the output is too long
+     */
+    private int writeSequence(byte[] out, int position, int literalsStart, int literalsLength,
+                              int offset, int matchLength) {
+        int required = 1 + literalsLength / 0xFF + 1 + literalsLength +
+                (matchLength > 0 ? 2 + matchLength / 0xFF + 1 : 0);
+        if (position + required >= pageSize)
+            return -1;
+
+        int tokenPosition = position++;
+        int token = Math.min(literalsLength, NIBBLE_MASK) << 4;
+        if (literalsLength >= NIBBLE_MASK)
+            position = writeLength(out, position, literalsLength - NIBBLE_MASK);
+
+        System.arraycopy(shuffled, literalsStart, out, position, literalsLength);
+        position += literalsLength;
+
+        if (matchLength > 0) {
+            out[position++] = (byte) (offset >>> 8);
+            out[position++] = (byte) offset;
+
+            int extra = matchLength - MIN_MATCH;
+            token |= Math.min(extra, NIBBLE_MASK);
+            if (extra >= NIBBLE_MASK)
+                position = writeLength(out, position, extra - NIBBLE_MASK);
+        }
+
+        out[tokenPosition] = (byte) token;
+        return position;
+    }
+
+    private static int writeLength(byte[] out, int position, int length) {
+        while (length >= 0xFF) {
+            out[position++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        out[position++] = (byte) length;
+        return position;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 |
+                (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Groups the i-th bytes of all values together
+     */
+    private void shuffle(byte[] page) {
+        int count = pageSize / BaseDoubleIndex.DOUBLE_SIZE;
+        for (int i = 0; i < count; i++)
+            for (int b = 0; b < BaseDoubleIndex.DOUBLE_SIZE; b++)
+                shuffled[b * count + i] = page[i * BaseDoubleIndex.DOUBLE_SIZE + b];
+    }
+
+    private void unshuffle(byte[] page) {
+        int count = pageSize / BaseDoubleIndex.DOUBLE_SIZE;
+        for (int i = 0; i < count; i++)
+            for (int b = 0; b < BaseDoubleIndex.DOUBLE_SIZE; b++)
+                page[i * BaseDoubleIndex.DOUBLE_SIZE + b] = shuffled[b * count + i];
+    }
+}
@@ -6,7 +6,16 @@ public class Percentile {
     private Selector selector;
 
     public Percentile(DoubleIndex index) {
-        this.selector = new QuickSelector(index);
+        this(new QuickSelector(index));
+    }
+
+    /**
+     * Creates percentile calculator with specified selection algorithm
+     *
+     * @param selector the selector over data
+     */
+    public Percentile(Selector selector) {
+        this.selector = selector;
     }
 
     /**
@@ -0,0 +1,30 @@
+package com.axibase.statistics;
+
+import java.io.IOException;
+
+public interface PercentileJob {
+    /**
+     * Opens index with series values. If the index is {@link AutoCloseable}
+     * it is closed after percentiles are computed
+     *
+     * @return the index to compute percentiles for
+     * @throws IOException          thrown if the index can't be opened
+     * @throws IndexAccessException thrown if the index can't be filled
+     */
+    DoubleIndex openIndex() throws IOException, IndexAccessException;
+
+    /**
+     * Returns the indices of percentiles to compute
+     *
+     * @return percentile indices in range [0, 100]
+     */
+    double[] getPercentiles();
+
+    /**
+     * Returns the amount of memory the index needs while the job runs,
+     * for example <code>pageSize * maxPages</code> for {@link CachedFileDoubleIndex}
+     *
+     * @return the memory usage in bytes
+     */
+    long getMemoryUsage();
+}
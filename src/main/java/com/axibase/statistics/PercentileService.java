@@ -0,0 +1,132 @@
+package com.axibase.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class computes percentiles for many series concurrently
+ * <p>
+ * Jobs are executed by provided {@link Executor}. Since computation mostly blocks
+ * on file I/O, virtual-thread-per-task executor fits well where it is available.
+ * The number of running jobs and their total memory usage are bounded.
+ * Submission blocks until both limits allow the job to start,
+ * which provides backpressure to the caller
+ */
+public class PercentileService {
+    private static final int MEMORY_UNIT = 1 << 10;
+
+    private final Executor executor;
+    private final Semaphore jobPermits;
+    private final Semaphore memoryPermits;
+    private final int memoryBudgetUnits;
+
+    /**
+     * Creates a new PercentileService
+     *
+     * @param executor          the executor to run jobs on
+     * @param maxConcurrentJobs the maximum number of jobs running at the same time
+     * @param memoryBudget      the maximum total memory usage of running jobs in bytes
+     */
+    public PercentileService(Executor executor, int maxConcurrentJobs, long memoryBudget) {
+        if (maxConcurrentJobs <= 0)
+            throw new IllegalArgumentException("Concurrent jobs limit should be positive");
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget should be positive");
+
+        this.executor = executor;
+        this.jobPermits = new Semaphore(maxConcurrentJobs, true);
+        this.memoryBudgetUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / MEMORY_UNIT));
+        this.memoryPermits = new Semaphore(memoryBudgetUnits, true);
+    }
+
+    /**
+     * Submits the job. Blocks while concurrency limit or memory budget is exhausted
+     *
+     * @param job the job to run
+     * @return the future completed with percentile values in order of
+     * {@link PercentileJob#getPercentiles() requested percentiles}
+     * @throws InterruptedException is thrown if interrupted while waiting for limits
+     */
+    public CompletableFuture<double[]> submit(final PercentileJob job) throws InterruptedException {
+        final int memoryUnits = toMemoryUnits(job.getMemoryUsage());
+
+        jobPermits.acquire();
+        try {
+            memoryPermits.acquire(memoryUnits);
+        } catch (InterruptedException e) {
+            jobPermits.release();
+            throw e;
+        }
+
+        final CompletableFuture<double[]> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                double[] values;
+                try {
+                    values = compute(job);
+                } catch (Throwable e) {
+                    release(memoryUnits);
+                    result.completeExceptionally(e);
+                    return;
+                }
+                release(memoryUnits);
+                result.complete(values);
+            });
+        } catch (RejectedExecutionException e) {
+            release(memoryUnits);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Submits the batch of jobs. Blocks while concurrency limit or memory budget is exhausted
+     *
+     * @param jobs the jobs to run
+     * @return the futures in order of submitted jobs
+     * @throws InterruptedException is thrown if interrupted while waiting for limits
+     */
+    public List<CompletableFuture<double[]>> submitAll(List<? extends PercentileJob> jobs)
+            throws InterruptedException {
+        List<CompletableFuture<double[]>> results = new ArrayList<>(jobs.size());
+        for (PercentileJob job : jobs)
+            results.add(submit(job));
+        return results;
+    }
+
+    /**
+     * Computes percentiles and closes the index. Close failure is suppressed
+     * by computation failure, as in try-with-resources statement
+     */
+    private double[] compute(PercentileJob job) throws Exception {
+        DoubleIndex index = job.openIndex();
+        try (AutoCloseable closeable = index instanceof AutoCloseable ? (AutoCloseable) index : null) {
+            double[] percentiles = job.getPercentiles();
+            double[] values = new double[percentiles.length];
+            Percentile percentile = new Percentile(index);
+
+            for (int i = 0; i < percentiles.length; i++)
+                values[i] = percentile.getPercentile(percentiles[i]);
+
+            return values;
+        }
+    }
+
+    /**
+     * Converts memory usage to semaphore permits. Jobs larger than
+     * the whole budget take it entirely to avoid waiting forever
+     */
+    private int toMemoryUnits(long memoryUsage) {
+        long units = (Math.max(0, memoryUsage) + MEMORY_UNIT - 1) / MEMORY_UNIT;
+        return (int) Math.min(units, memoryBudgetUnits);
+    }
+
+    private void release(int memoryUnits) {
+        memoryPermits.release(memoryUnits);
+        jobPermits.release();
+    }
+}
@@ -0,0 +1,162 @@
+package com.axibase.statistics;
+
+/**
+ * This class computes order statistics over the same data, sharing
+ * partitioning state of single {@link QuickSelector} between them
+ * <p>
+ * Once two ranks are selected, all elements between them are already placed
+ * between their positions, so trimmed and winsorized means are computed
+ * as single range sum. Median absolute deviation is selected over lazily
+ * transformed view of data
+ */
+public class RobustStatistics {
+    private static final double MEDIAN = 50.0;
+    private static final double LOWER_QUARTILE = 25.0;
+    private static final double UPPER_QUARTILE = 75.0;
+
+    private DoubleIndex data;
+    private Percentile percentile;
+    private Selector selector;
+    private Double medianAbsoluteDeviation;
+
+    /**
+     * Index view with absolute deviations of data values from center.
+     * Swaps are delegated to data, so selection over the view permutes data
+     */
+    private static class DeviationIndex extends BaseDoubleIndex {
+        private DoubleIndex data;
+        private double center;
+
+        DeviationIndex(DoubleIndex data, double center) {
+            this.data = data;
+            this.center = center;
+        }
+
+        @Override
+        public int length() {
+            return data.length();
+        }
+
+        @Override
+        public double get(int index) throws IndexAccessException {
+            return Math.abs(data.get(index) - center);
+        }
+
+        @Override
+        public void set(int index, double value) {
+            throw new UnsupportedOperationException("Deviation view can't be modified");
+        }
+
+        @Override
+        public void swap(int i, int j) throws IndexAccessException {
+            data.swap(i, j);
+        }
+    }
+
+    public RobustStatistics(DoubleIndex data) {
+        this.data = data;
+        resetSelector();
+    }
+
+    /**
+     * Computes p-th percentile, see {@link Percentile#getPercentile(double)}
+     *
+     * @param p the index of percentile to compute
+     * @return the computed value for p-th percentile
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    public double getPercentile(double p) throws IndexAccessException {
+        return percentile.getPercentile(p);
+    }
+
+    public double getMedian() throws IndexAccessException {
+        return percentile.getPercentile(MEDIAN);
+    }
+
+    /**
+     * Computes the difference between 75th and 25th percentiles
+     *
+     * @return the interquartile range
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    public double getInterquartileRange() throws IndexAccessException {
+        return percentile.getPercentile(UPPER_QUARTILE) - percentile.getPercentile(LOWER_QUARTILE);
+    }
+
+    /**
+     * Computes the mean of values left after removing <code>floor(fraction * length)</code>
+     * smallest and largest values
+     *
+     * @param fraction the fraction of values to trim at each side, in range [0, 0.5)
+     * @return the trimmed mean
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    public double getTrimmedMean(double fraction) throws IndexAccessException {
+        int trimmed = getTrimmedCount(fraction);
+        int leftBound = trimmed, rightBound = data.length() - 1 - trimmed;
+        return sumRange(leftBound, rightBound) / (rightBound - leftBound + 1);
+    }
+
+    /**
+     * Computes the mean of values after replacing <code>floor(fraction * length)</code>
+     * smallest and largest values with the nearest remaining values
+     *
+     * @param fraction the fraction of values to replace at each side, in range [0, 0.5)
+     * @return the winsorized mean
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    public double getWinsorizedMean(double fraction) throws IndexAccessException {
+        int trimmed = getTrimmedCount(fraction);
+        int leftBound = trimmed, rightBound = data.length() - 1 - trimmed;
+        double sum = sumRange(leftBound, rightBound) +
+                trimmed * (selector.select(leftBound) + selector.select(rightBound));
+        return sum / data.length();
+    }
+
+    /**
+     * Computes the median of absolute deviations from the median.
+     * Selection over deviations permutes data, so partitioning state
+     * is lost after the first call
+     *
+     * @return the median absolute deviation
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    public double getMedianAbsoluteDeviation() throws IndexAccessException {
+        if (medianAbsoluteDeviation == null) {
+            DeviationIndex deviations = new DeviationIndex(data, getMedian());
+            medianAbsoluteDeviation = new Percentile(deviations).getPercentile(MEDIAN);
+            resetSelector();
+        }
+        return medianAbsoluteDeviation;
+    }
+
+    private void resetSelector() {
+        selector = new QuickSelector(data);
+        percentile = new Percentile(selector);
+    }
+
+    private int getTrimmedCount(double fraction) {
+        if (fraction < 0.0 || fraction >= 0.5)
+            throw new IllegalArgumentException("Trimmed fraction should be in range [0, 0.5)");
+        return (int) (fraction * data.length());
+    }
+
+    /**
+     * Sums values with ranks in range. Both bounds are selected first,
+     * so the range contains exactly these values and is read sequentially
+     *
+     * @param leftBound  the rank of first value inclusively
+     * @param rightBound the rank of last value inclusively
+     * @return the sum of values
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    private double sumRange(int leftBound, int rightBound) throws IndexAccessException {
+        double sum = selector.select(leftBound);
+        if (rightBound > leftBound)
+            sum += selector.select(rightBound);
+
+        for (int i = leftBound + 1; i < rightBound; i++)
+            sum += data.get(i);
+        return sum;
+    }
+}
@@ -0,0 +1,327 @@
+package com.axibase.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class implements selection by sampling-based pivot bracketing
+ * <p>
+ * The idea is taken from Floyd-Rivest algorithm: the random sample is used to choose
+ * two values bracketing the k-th smallest element. Then single pass over data counts
+ * elements below and equal to the brackets and copies elements strictly between them
+ * to memory, where the selection is finished. Data is only read, never written, so this
+ * selector suits disk-resident or read-only indices
+ * <p>
+ * The sample is taken from a few whole pages, so it costs a small fraction of a pass.
+ * Memory for elements between brackets is bounded. If more elements fall between
+ * brackets, a random subset of them is kept instead and used to choose narrower
+ * brackets for the next pass. Data which fits the bound is selected in one pass
+ * without sampling
+ * <p>
+ * Candidates from the last pass are kept, so nearby ranks, like adjacent ranks
+ * requested by {@link Percentile}, are served without reading data. Every other
+ * rank costs at least one more pass over data
+ * <p>
+ * NaN values are ordered after all other values, as by {@link Arrays#sort(double[])}
+ */
+public class SamplingSelector implements Selector {
+    private static final int DEFAULT_MAX_CANDIDATES = 1 << 20;
+    private static final int MAX_SAMPLE_SIZE = 1 << 18;
+    private static final int MIN_SAMPLE_PAGES = 4;
+    private static final int SAMPLE_PAGES_RATIO = 16;
+    private static final double ERROR_MARGIN = 3.0;
+
+    private final Random rand = new Random();
+
+    private DoubleIndex data;
+    private int pageLength;
+    private int maxCandidates;
+
+    private double[][] pageSamples;
+    private double[] sample;
+
+    private double lowerBracket, upperBracket;
+    private int below, equalLower, between, equalUpper, nanCount;
+    private boolean overflow;
+    private boolean collected;
+    private double[] candidates;
+
+    /**
+     * Creates selector based on {@link DoubleIndex} as data
+     *
+     * @param data the double-value data accessed by index
+     */
+    public SamplingSelector(DoubleIndex data) {
+        this(data, CachedFileDoubleIndex.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates selector based on {@link DoubleIndex} as data
+     *
+     * @param data     the double-value data accessed by index
+     * @param pageSize the size of page of underlying index in bytes, sample is read by whole pages
+     */
+    public SamplingSelector(DoubleIndex data, int pageSize) {
+        this(data, pageSize, DEFAULT_MAX_CANDIDATES);
+    }
+
+    /**
+     * Creates selector based on {@link DoubleIndex} as data
+     *
+     * @param data          the double-value data accessed by index
+     * @param pageSize      the size of page of underlying index in bytes, sample is read by whole pages
+     * @param maxCandidates the maximum number of elements kept in memory
+     */
+    public SamplingSelector(DoubleIndex data, int pageSize, int maxCandidates) {
+        if (maxCandidates <= 0)
+            throw new IllegalArgumentException("Candidates limit should be positive");
+
+        this.data = data;
+        this.pageLength = Math.max(1, pageSize / BaseDoubleIndex.DOUBLE_SIZE);
+        this.maxCandidates = maxCandidates;
+    }
+
+    @Override
+    public int length() {
+        return data.length();
+    }
+
+    /**
+     * Returns the number of elements kept in memory after the last pass
+     *
+     * @return the number of candidates
+     */
+    int getCandidatesCount() {
+        return collected ? Math.min(between, maxCandidates) : 0;
+    }
+
+    /**
+     * Reads a few random whole pages as sample and sorts them
+     *
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    private void initSample() throws IndexAccessException {
+        int length = data.length();
+        int pageCount = (length + pageLength - 1) / pageLength;
+        int samplePages = Math.max(MIN_SAMPLE_PAGES, pageCount / SAMPLE_PAGES_RATIO);
+        samplePages = Math.min(pageCount, Math.min(samplePages, Math.max(1, MAX_SAMPLE_SIZE / pageLength)));
+
+        int[] pageIndices = new int[pageCount];
+        for (int i = 0; i < pageCount; i++)
+            pageIndices[i] = i;
+        for (int i = 0; i < samplePages; i++) {
+            int j = i + rand.nextInt(pageCount - i);
+            int t = pageIndices[i];
+            pageIndices[i] = pageIndices[j];
+            pageIndices[j] = t;
+        }
+        Arrays.sort(pageIndices, 0, samplePages);
+
+        pageSamples = new double[samplePages][];
+        int sampleSize = 0;
+        for (int p = 0; p < samplePages; p++) {
+            int start = pageIndices[p] * pageLength;
+            int end = Math.min(length, start + pageLength);
+            double[] values = new double[end - start];
+            for (int i = start; i < end; i++)
+                values[i - start] = data.get(i);
+            Arrays.sort(values);
+            pageSamples[p] = values;
+            sampleSize += values.length;
+        }
+
+        sample = new double[sampleSize];
+        int position = 0;
+        for (double[] values : pageSamples) {
+            System.arraycopy(values, 0, sample, position, values.length);
+            position += values.length;
+        }
+        Arrays.sort(sample);
+    }
+
+    /**
+     * Estimates standard error of the fraction of elements below the value,
+     * taking into account that values within a page may be correlated
+     *
+     * @param value the value to estimate fraction for
+     * @return the standard error of fraction
+     */
+    private double getSampleError(double value) {
+        int pages = pageSamples.length;
+        if (pages < 2)
+            return 1.0;
+
+        double sum = 0, sumOfSquares = 0;
+        for (double[] values : pageSamples) {
+            double fraction = (double) countBelow(values, value) / values.length;
+            sum += fraction;
+            sumOfSquares += fraction * fraction;
+        }
+        double mean = sum / pages;
+        double variance = Math.max(0.0, (sumOfSquares - pages * mean * mean) / (pages - 1));
+        return Math.sqrt(variance / pages);
+    }
+
+    /**
+     * Counts values in sorted array which are smaller than specified value
+     */
+    private static int countBelow(double[] sorted, double value) {
+        int left = 0, right = sorted.length;
+        while (left < right) {
+            int middle = (left + right) >>> 1;
+            if (sorted[middle] < value)
+                left = middle + 1;
+            else
+                right = middle;
+        }
+        return left;
+    }
+
+    /**
+     * Counts values in sorted array which are not NaN, they precede all NaN values
+     */
+    private static int countNumbers(double[] sorted) {
+        int count = sorted.length;
+        while (count > 0 && Double.isNaN(sorted[count - 1]))
+            count--;
+        return count;
+    }
+
+    /**
+     * Makes single pass over data. Counts elements below the lower bracket,
+     * equal to brackets and NaN elements, collects sorted elements strictly between brackets.
+     * If there are too many of them, keeps their uniform random subset
+     *
+     * @param lower the lower bracket value
+     * @param upper the upper bracket value
+     * @throws IndexAccessException is thrown on index access issues
+     */
+    private void collectCandidates(double lower, double upper) throws IndexAccessException {
+        int length = data.length();
+        below = equalLower = between = equalUpper = nanCount = 0;
+        if (candidates == null)
+            candidates = new double[Math.min(maxCandidates, Math.max(1, length))];
+
+        for (int i = 0; i < length; i++) {
+            double value = data.get(i);
+            if (Double.isNaN(value)) {
+                nanCount++;
+            } else if (value < lower) {
+                below++;
+            } else if (value == lower) {
+                equalLower++;
+            } else if (value < upper) {
+                if (between < candidates.length) {
+                    candidates[between] = value;
+                } else {
+                    int j = rand.nextInt(between + 1);
+                    if (j < candidates.length)
+                        candidates[j] = value;
+                }
+                between++;
+            } else if (value == upper) {
+                equalUpper++;
+            }
+        }
+
+        lowerBracket = lower;
+        upperBracket = upper;
+        overflow = between > candidates.length;
+        collected = true;
+        Arrays.sort(candidates, 0, Math.min(between, candidates.length));
+    }
+
+    /**
+     * Checks whether the k-th smallest element is known after the last pass
+     */
+    private boolean isResolved(int k) {
+        if (!collected)
+            return false;
+        if (k >= data.length() - nanCount)
+            return true;
+        int r = k - below;
+        return r >= 0 && r < equalLower + between + equalUpper &&
+                (r < equalLower || r >= equalLower + between || !overflow);
+    }
+
+    /**
+     * Returns the k-th smallest element, which is known after the last pass
+     */
+    private double getResolved(int k) {
+        if (k >= data.length() - nanCount)
+            return Double.NaN;
+        int r = k - below;
+        if (r < equalLower)
+            return lowerBracket;
+        else if (r < equalLower + between)
+            return candidates[r - equalLower];
+        else
+            return upperBracket;
+    }
+
+    @Override
+    public double select(int k) throws IndexAccessException {
+        int length = data.length();
+        if (k < 0 || k >= length)
+            throw new IndexOutOfBoundsException();
+        if (isResolved(k))
+            return getResolved(k);
+
+        if (length <= maxCandidates) {
+            collectCandidates(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            return getResolved(k);
+        }
+
+        if (sample == null)
+            initSample();
+
+        // NaN values are sorted to the end of sample, they are never used as brackets
+        double[] currentSample = sample;
+        int sampleCount = sample.length, numbersCount = countNumbers(sample);
+        double contextLower = Double.NEGATIVE_INFINITY, contextUpper = Double.POSITIVE_INFINITY;
+        int contextRank = k, contextCount = length;
+        boolean clustered = true;
+        long widening = 1;
+
+        while (true) {
+            double lower = contextLower, upper = contextUpper;
+            if (numbersCount > 0) {
+                int position = (int) ((long) contextRank * sampleCount / contextCount);
+                position = Math.min(position, numbersCount - 1);
+
+                double gap = 2 * Math.sqrt(sampleCount);
+                if (clustered)
+                    gap = Math.max(gap, ERROR_MARGIN * getSampleError(currentSample[position]) * sampleCount);
+                long scaledGap = (long) Math.ceil(gap) * widening;
+
+                long lowerPosition = position - scaledGap, upperPosition = position + scaledGap;
+                if (lowerPosition >= 0)
+                    lower = currentSample[(int) lowerPosition];
+                if (upperPosition < numbersCount)
+                    upper = currentSample[(int) upperPosition];
+            }
+
+            collectCandidates(lower, upper);
+            if (isResolved(k))
+                return getResolved(k);
+
+            int r = k - below - equalLower;
+            if (r >= 0 && r < between) {
+                // too many elements between brackets, continue with their random subset
+                currentSample = Arrays.copyOf(candidates, candidates.length);
+                sampleCount = numbersCount = currentSample.length;
+                contextLower = lower;
+                contextUpper = upper;
+                contextRank = r;
+                contextCount = between;
+                clustered = false;
+                widening = 1;
+            } else if (lower == contextLower && upper == contextUpper) {
+                // the pass over the whole context must have resolved the rank
+                throw new IllegalStateException("Selection over context has not converged, data is modified");
+            } else {
+                widening *= 2;
+            }
+        }
+    }
+}
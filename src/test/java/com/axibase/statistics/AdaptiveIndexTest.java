@@ -0,0 +1,94 @@
+package com.axibase.statistics;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveIndexTest {
+
+    private static final String testFileName =
+            new File(System.getProperty("java.io.tmpdir"), "adaptive.dat").getPath();
+
+    @Test
+    void testSmallInMemory() throws IOException, IndexAccessException {
+        int count = 1_000;
+        try (AdaptiveDoubleIndex index = new AdaptiveDoubleIndex(testFileName, count * BaseDoubleIndex.DOUBLE_SIZE)) {
+            for (int i = 0; i < count; i++)
+                index.addValue(i);
+            index.completeInsertion();
+
+            assertFalse(index.isSpilled(), "Small index should stay in memory");
+            assertFalse(new File(testFileName).exists(), "Small index should not create file");
+            assertValues(index, count);
+        }
+    }
+
+    @Test
+    void testSpill() throws IOException, IndexAccessException {
+        int count = 100_000;
+        try (AdaptiveDoubleIndex index = new AdaptiveDoubleIndex(testFileName, 1 << 12, 1 << 12, 4, false)) {
+            for (int i = 0; i < count; i++)
+                index.addValue(i);
+            index.completeInsertion();
+
+            assertTrue(index.isSpilled(), "Large index should be moved to file");
+            assertTrue(new File(testFileName).exists(), "Large index should create file");
+            assertValues(index, count);
+        }
+        assertFalse(new File(testFileName).exists(), "File should be removed on close");
+    }
+
+    @Test
+    void testFailedSpill() throws IOException, IndexAccessException {
+        String missingPath = new File(new File(testFileName + ".missing"), "adaptive.dat").getPath();
+        int count = 1_000;
+        try (AdaptiveDoubleIndex index = new AdaptiveDoubleIndex(missingPath, count * BaseDoubleIndex.DOUBLE_SIZE)) {
+            for (int i = 0; i < count; i++)
+                index.addValue(i);
+
+            try {
+                index.addValue(count);
+                throw new AssertionError("Spill to missing directory should fail");
+            } catch (IndexAccessException e) {
+                assertFalse(index.isSpilled(), "Failed spill should keep values in memory");
+            }
+            assertValues(index, count);
+        }
+    }
+
+    @Test
+    void testSwapAndSelect() throws IOException, IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(10_000);
+        double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+
+        for (int threshold : new int[]{1 << 10, 1 << 20}) {
+            try (AdaptiveDoubleIndex index = new AdaptiveDoubleIndex(testFileName, threshold)) {
+                for (double value : values)
+                    index.addValue(value);
+                index.completeInsertion();
+
+                Selector selector = new QuickSelector(index);
+                for (int selectionIndex : ValueGenerator.generateIndices(values.length)) {
+                    double actual = selector.select(selectionIndex);
+                    assertEquals(actual, sortedValues[selectionIndex],
+                            "Incorrect selection value with k=" + selectionIndex);
+                }
+            }
+        }
+    }
+
+    private void assertValues(DoubleIndex index, int count) throws IndexAccessException {
+        assertEquals(index.length(), count, "Incorrect index length");
+        for (int i = 0; i < count; i++) {
+            double got = index.get(i);
+            assertEquals(got, (double) i, "Incorrect value at index " + i);
+        }
+    }
+}
@@ -2,14 +2,17 @@ package com.axibase.statistics;
 
 import org.testng.annotations.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Random;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class CacheTest {
 
-    private static final String testFileName = "test.dat";
+    private static final String testFileName =
+            new File(System.getProperty("java.io.tmpdir"), "test.dat").getPath();
 
     @Test
     void testTrivial() throws IOException, IndexAccessException {
@@ -71,4 +74,81 @@ public class CacheTest {
         }
     }
 
+    @Test
+    void testCompressedInitAndRead() throws IOException, IndexAccessException {
+        int count = 1_000_000;
+        try (CachedFileDoubleIndex index = new CachedFileDoubleIndex(testFileName, 1 << 12, 4, true)) {
+
+            for (int i = 0; i < count; i++)
+                index.addValue(i);
+            index.completeInsertion();
+
+            for (int i = 0; i < count; i++) {
+                double got = index.get(i);
+                assertEquals(got, (double) i, "Incorrect value at index " + i);
+            }
+        }
+    }
+
+    @Test
+    void testCompressedSwap() throws IOException, IndexAccessException {
+        int count = 100_000, swapCount = 20_000;
+        Random rand = new Random(19);
+        double[] values = new double[count];
+
+        try (CachedFileDoubleIndex index = new CachedFileDoubleIndex(testFileName, 1 << 14, 8, true)) {
+            for (int i = 0; i < count; i++) {
+                values[i] = i % 100 == 0 ? rand.nextDouble() : i / 1000;
+                index.addValue(values[i]);
+            }
+            index.completeInsertion();
+
+            for (int i = 0; i < swapCount; i++) {
+                int firstToSwap = rand.nextInt(count);
+                int secondToSwap = rand.nextInt(count);
+
+                index.swap(firstToSwap, secondToSwap);
+
+                double t = values[firstToSwap];
+                values[firstToSwap] = values[secondToSwap];
+                values[secondToSwap] = t;
+            }
+
+            for (int i = 0; i < count; i++) {
+                double got = index.get(i);
+                assertEquals(got, values[i], "Incorrect value at index " + i);
+            }
+        }
+    }
+
+    @Test
+    void testCompressedSize() throws IOException, IndexAccessException {
+        int count = 200_000, swapCount = 20_000;
+        String compressedFileName = testFileName + ".compressed";
+        Random rand = new Random(19);
+
+        try (CachedFileDoubleIndex raw = new CachedFileDoubleIndex(testFileName, 1 << 14, 8);
+             CachedFileDoubleIndex compressed = new CachedFileDoubleIndex(compressedFileName, 1 << 14, 8, true)) {
+            double value = 1000;
+            for (int i = 0; i < count; i++) {
+                value += rand.nextInt(21) - 10;
+                raw.addValue(value);
+                compressed.addValue(value);
+            }
+            raw.completeInsertion();
+            compressed.completeInsertion();
+
+            assertTrue(compressed.getBytesWritten() * 3 < raw.getBytesWritten(),
+                    "Compressed index wrote " + compressed.getBytesWritten() + " bytes, raw " + raw.getBytesWritten());
+
+            for (int i = 0; i < swapCount; i++)
+                compressed.swap(rand.nextInt(count), rand.nextInt(count));
+
+            long compressedLength = new File(compressedFileName).length();
+            long rawLength = new File(testFileName).length();
+            assertTrue(compressedLength * 2 < rawLength,
+                    "Compressed file is " + compressedLength + " bytes after swaps, raw " + rawLength);
+        }
+    }
+
 }
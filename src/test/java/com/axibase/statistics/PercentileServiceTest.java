@@ -0,0 +1,208 @@
+package com.axibase.statistics;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PercentileServiceTest {
+    private static final double[] PERCENTILES = {0.0, 25.0, 50.0, 75.0, 99.0, 100.0};
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    void initExecutor() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterClass
+    void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testFileSeries() throws Exception {
+        PercentileService service = new PercentileService(executor, 4, 1 << 20);
+        List<PercentileJob> jobs = new ArrayList<>();
+        List<double[]> series = new ArrayList<>();
+
+        for (int i = 0; i < 16; i++) {
+            final double[] values = ValueGenerator.generateRandom(10_000 + i * 1_000, i + 1.0);
+            series.add(values);
+            jobs.add(new FileJob(values));
+        }
+
+        List<CompletableFuture<double[]>> results = service.submitAll(jobs);
+
+        for (int i = 0; i < jobs.size(); i++)
+            assertPercentiles(results.get(i).get(), series.get(i));
+    }
+
+    @Test
+    void testConcurrencyLimit() throws Exception {
+        int maxRunning = runTrackedJobs(new PercentileService(executor, 3, 1 << 20), 32, 1 << 10);
+        assertTrue(maxRunning <= 3, "Concurrent jobs limit exceeded: " + maxRunning);
+    }
+
+    @Test
+    void testMemoryBudget() throws Exception {
+        int maxRunning = runTrackedJobs(new PercentileService(executor, 8, 2 << 20), 16, 1 << 20);
+        assertTrue(maxRunning <= 2, "Memory budget exceeded by " + maxRunning + " jobs");
+    }
+
+    @Test(expectedExceptions = IndexAccessException.class)
+    void testFailedJob() throws Throwable {
+        PercentileService service = new PercentileService(executor, 2, 1 << 20);
+        CompletableFuture<double[]> result = service.submit(new MemoryJob(new double[]{1.0}) {
+            @Override
+            public DoubleIndex openIndex() throws IndexAccessException {
+                throw new IndexAccessException("Broken series");
+            }
+        });
+
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    void testFailedJobClose() throws Exception {
+        PercentileService service = new PercentileService(executor, 2, 1 << 20);
+        CompletableFuture<double[]> result = service.submit(new MemoryJob(new double[]{1.0}) {
+            @Override
+            public DoubleIndex openIndex() {
+                return new CloseableIndex() {
+                    @Override
+                    public double get(int index) throws IndexAccessException {
+                        throw new IndexAccessException("Broken value");
+                    }
+                };
+            }
+        });
+
+        try {
+            result.get();
+            throw new AssertionError("Failed job completed normally");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue(cause instanceof IndexAccessException, "Primary failure replaced by " + cause);
+            assertEquals(cause.getSuppressed().length, 1, "Close failure should be suppressed");
+            assertTrue(cause.getSuppressed()[0] instanceof IOException, "Incorrect suppressed failure");
+        }
+    }
+
+    private static void assertPercentiles(double[] actual, double[] values) {
+        DescriptiveStatistics desc = new DescriptiveStatistics(values);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            double expected = PERCENTILES[i] == 0.0 ? desc.getMin() : desc.getPercentile(PERCENTILES[i]);
+            assertEquals(actual[i], expected, "Incorrect percentile value for p=" + PERCENTILES[i]);
+        }
+    }
+
+    private static int runTrackedJobs(PercentileService service, int count, final long memoryUsage)
+            throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<double[]>> results = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            results.add(service.submit(new MemoryJob(ValueGenerator.generateRandom(10_000)) {
+                @Override
+                public DoubleIndex openIndex() throws IOException, IndexAccessException {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return super.openIndex();
+                }
+
+                @Override
+                public long getMemoryUsage() {
+                    return memoryUsage;
+                }
+            }));
+        }
+
+        for (CompletableFuture<double[]> result : results)
+            result.get();
+        return maxRunning.get();
+    }
+
+    private static class MemoryJob implements PercentileJob {
+        final double[] values;
+
+        MemoryJob(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public DoubleIndex openIndex() throws IOException, IndexAccessException {
+            return new MemoryIndex(Arrays.copyOf(values, values.length));
+        }
+
+        @Override
+        public double[] getPercentiles() {
+            return PERCENTILES;
+        }
+
+        @Override
+        public long getMemoryUsage() {
+            return values.length * BaseDoubleIndex.DOUBLE_SIZE;
+        }
+    }
+
+    private static class CloseableIndex extends MemoryIndex implements AutoCloseable {
+        CloseableIndex() {
+            super(new double[]{1.0});
+        }
+
+        @Override
+        public void close() throws IOException {
+            throw new IOException("Broken close");
+        }
+    }
+
+    private static class FileJob extends MemoryJob {
+        private static final int PAGE_SIZE = 1 << 12;
+        private static final int MAX_PAGES = 4;
+
+        FileJob(double[] values) {
+            super(values);
+        }
+
+        @Override
+        public DoubleIndex openIndex() throws IOException, IndexAccessException {
+            File file = File.createTempFile("percentile-service", ".dat");
+            CachedFileDoubleIndex index = new CachedFileDoubleIndex(file.getPath(), PAGE_SIZE, MAX_PAGES);
+            for (double value : values)
+                index.addValue(value);
+            index.completeInsertion();
+            return index;
+        }
+
+        @Override
+        public long getMemoryUsage() {
+            return PAGE_SIZE * MAX_PAGES;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.axibase.statistics;
+
+import com.sun.management.ThreadMXBean;
+import org.testng.Reporter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Measures wall time, page I/O and allocation of percentile computation over
+ * {@link CachedFileDoubleIndex} on large data. These tests are excluded
+ * from default build, run them with <code>mvn test -Pperformance</code>.
+ * Measurements are written to TestNG report
+ * <p>
+ * Budgets are baselines multiplied by <code>perf.margin</code>, 1.5 by default. Baselines are
+ * the worst of three runs on 100M values, pivots are random, so page reads vary by 40% between runs.
+ * Data size and margin can be changed with <code>perf.values</code> and <code>perf.margin</code>
+ * system properties. Fixed costs weigh more on smaller data, so time budgets hold for 100M values
+ * and runs on less data need larger margin
+ */
+@Test(groups = "performance")
+public class PerformanceTest {
+    private static final double[] PERCENTILES = {50.0, 90.0, 95.0, 99.0, 99.9};
+
+    private static final int VALUES_COUNT = Integer.getInteger("perf.values", 100_000_000);
+    private static final double MARGIN = Double.parseDouble(System.getProperty("perf.margin", "1.5"));
+    private static final double BASELINE_PAGE_READS_PER_PAGE = 10.5;
+    private static final long BASELINE_ALLOCATED_BYTES = 16L << 20;
+
+    private Path directory;
+
+    @BeforeClass
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("statistics-performance");
+    }
+
+    @AfterClass
+    void removeDirectory() throws IOException {
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Provides distribution, compression flag and baseline time in nanoseconds per value
+     */
+    @DataProvider
+    Object[][] distributions() {
+        return new Object[][]{
+                {ValueGenerator.Distribution.UNIFORM, false, 210},
+                {ValueGenerator.Distribution.UNIFORM, true, 400},
+                {ValueGenerator.Distribution.GAUSSIAN, false, 280},
+                {ValueGenerator.Distribution.GAUSSIAN, true, 480},
+                {ValueGenerator.Distribution.SORTED, false, 70},
+                {ValueGenerator.Distribution.SORTED, true, 170},
+                {ValueGenerator.Distribution.DUPLICATES, false, 220},
+                {ValueGenerator.Distribution.DUPLICATES, true, 590},
+        };
+    }
+
+    @Test(dataProvider = "distributions")
+    void testPercentiles(ValueGenerator.Distribution distribution, boolean compressed,
+                         int baselineNanosPerValue)
+            throws IOException, IndexAccessException {
+        File file = new File(directory.toFile(), distribution + ".dat");
+        String name = distribution + (compressed ? " compressed" : "");
+        int pageSize = CachedFileDoubleIndex.DEFAULT_PAGE_SIZE;
+
+        long allocatedBefore = getAllocatedBytes();
+        long started = System.nanoTime();
+
+        try (CachedFileDoubleIndex index = new CachedFileDoubleIndex(file.getPath(), pageSize,
+                CachedFileDoubleIndex.DEFAULT_MAX_PAGES, compressed)) {
+            Random rand = ValueGenerator.createRandom();
+            for (int i = 0; i < VALUES_COUNT; i++)
+                index.addValue(distribution.next(rand, i));
+            index.completeInsertion();
+            long inserted = System.nanoTime();
+
+            Percentile percentile = new Percentile(index);
+            for (double p : PERCENTILES)
+                percentile.getPercentile(p);
+
+            long finished = System.nanoTime();
+            long allocated = getAllocatedBytes() - allocatedBefore;
+            long pageCount = ((long) VALUES_COUNT * BaseDoubleIndex.DOUBLE_SIZE + pageSize - 1) / pageSize;
+            long nanosPerValue = (finished - started) / VALUES_COUNT;
+            double pageReadsPerPage = (double) index.getPagesRead() / pageCount;
+
+            Reporter.log(String.format("%s: insertion %d ms, selection %d ms, %d ns per value, " +
+                            "pages read %d (%.2f per page), pages written %d, " +
+                            "bytes read %d, bytes written %d, allocated %d bytes",
+                    name, (inserted - started) / 1_000_000, (finished - inserted) / 1_000_000, nanosPerValue,
+                    index.getPagesRead(), pageReadsPerPage, index.getPagesWritten(),
+                    index.getBytesRead(), index.getBytesWritten(), allocated));
+
+            assertTrue(nanosPerValue <= baselineNanosPerValue * MARGIN,
+                    name + ": time budget exceeded, " + nanosPerValue + " ns per value");
+            assertTrue(pageReadsPerPage <= BASELINE_PAGE_READS_PER_PAGE * MARGIN,
+                    name + ": page I/O budget exceeded, " + pageReadsPerPage + " reads per page");
+            if (allocated >= 0)
+                assertTrue(allocated <= BASELINE_ALLOCATED_BYTES * MARGIN,
+                        name + ": allocation budget exceeded, " + allocated + " bytes allocated");
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by current thread
+     * or -1 if the measurement is not supported by JVM
+     */
+    private static long getAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean) {
+            ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
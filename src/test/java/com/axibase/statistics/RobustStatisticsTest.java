@@ -0,0 +1,94 @@
+package com.axibase.statistics;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+
+public class RobustStatisticsTest {
+    private static final double DELTA = 1e-9;
+
+    private double[] values;
+
+    @BeforeClass
+    void initRandomValues() {
+        values = ValueGenerator.generateRandom(100_000, 100.0);
+    }
+
+    @Test
+    void testInterquartileRange() throws IndexAccessException {
+        DescriptiveStatistics desc = new DescriptiveStatistics(values);
+        RobustStatistics statistics = new RobustStatistics(new MemoryIndex(Arrays.copyOf(values, values.length)));
+
+        double expected = desc.getPercentile(75.0) - desc.getPercentile(25.0);
+        assertEquals(statistics.getInterquartileRange(), expected, "Incorrect interquartile range");
+    }
+
+    @Test
+    void testTrimmedMean() throws IndexAccessException {
+        double[] sortedValues = sorted(values);
+        RobustStatistics statistics = new RobustStatistics(new MemoryIndex(Arrays.copyOf(values, values.length)));
+
+        for (double fraction : new double[]{0.0, 0.05, 0.1, 0.25, 0.499}) {
+            int trimmed = (int) (fraction * values.length);
+            double sum = 0;
+            for (int i = trimmed; i < values.length - trimmed; i++)
+                sum += sortedValues[i];
+            double expected = sum / (values.length - 2 * trimmed);
+
+            assertEquals(statistics.getTrimmedMean(fraction), expected, DELTA,
+                    "Incorrect trimmed mean for fraction " + fraction);
+        }
+    }
+
+    @Test
+    void testWinsorizedMean() throws IndexAccessException {
+        double[] sortedValues = sorted(values);
+        RobustStatistics statistics = new RobustStatistics(new MemoryIndex(Arrays.copyOf(values, values.length)));
+
+        for (double fraction : new double[]{0.0, 0.05, 0.1, 0.25}) {
+            int trimmed = (int) (fraction * values.length);
+            double sum = 0;
+            for (int i = 0; i < values.length; i++)
+                sum += sortedValues[Math.min(Math.max(i, trimmed), values.length - 1 - trimmed)];
+            double expected = sum / values.length;
+
+            assertEquals(statistics.getWinsorizedMean(fraction), expected, DELTA,
+                    "Incorrect winsorized mean for fraction " + fraction);
+        }
+    }
+
+    @Test
+    void testMedianAbsoluteDeviation() throws IndexAccessException {
+        DescriptiveStatistics desc = new DescriptiveStatistics(values);
+        double median = desc.getPercentile(50.0);
+        DescriptiveStatistics deviations = new DescriptiveStatistics();
+        for (double value : values)
+            deviations.addValue(Math.abs(value - median));
+
+        RobustStatistics statistics = new RobustStatistics(new MemoryIndex(Arrays.copyOf(values, values.length)));
+        assertEquals(statistics.getMedianAbsoluteDeviation(), deviations.getPercentile(50.0),
+                "Incorrect median absolute deviation");
+        assertEquals(statistics.getMedian(), median, "Incorrect median after deviation selection");
+        assertEquals(statistics.getInterquartileRange(), desc.getPercentile(75.0) - desc.getPercentile(25.0),
+                "Incorrect interquartile range after deviation selection");
+    }
+
+    @Test
+    void testSingleValue() throws IndexAccessException {
+        RobustStatistics statistics = new RobustStatistics(new MemoryIndex(new double[]{1.0}));
+
+        assertEquals(statistics.getTrimmedMean(0.25), 1.0, "Incorrect trimmed mean");
+        assertEquals(statistics.getWinsorizedMean(0.25), 1.0, "Incorrect winsorized mean");
+        assertEquals(statistics.getMedianAbsoluteDeviation(), 0.0, "Incorrect median absolute deviation");
+    }
+
+    private static double[] sorted(double[] values) {
+        double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+        return sortedValues;
+    }
+}
@@ -0,0 +1,237 @@
+package com.axibase.statistics;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.testng.annotations.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class SamplingSelectorTest {
+
+    private static final String testFileName =
+            new File(System.getProperty("java.io.tmpdir"), "sampling.dat").getPath();
+
+    @Test
+    void testUnsorted() throws IndexAccessException {
+        testWith(ValueGenerator.generateRandom(100_000));
+    }
+
+    @Test
+    void testSorted() throws IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(100_000);
+        Arrays.sort(values);
+        testWith(values);
+    }
+
+    @Test
+    void testDuplicates() throws IndexAccessException {
+        Random rand = new Random(19);
+        double[] values = new double[100_000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = rand.nextInt(5);
+        testWith(values);
+    }
+
+    @Test
+    void testAllEqualLarge() throws IndexAccessException {
+        double[] values = new double[2_000_000];
+        Arrays.fill(values, 7.0);
+
+        SamplingSelector selector = new SamplingSelector(new ReadOnlyIndex(values));
+        for (int k : new int[]{0, values.length / 2, values.length - 1})
+            assertEquals(selector.select(k), 7.0, "Incorrect selection value with k=" + k);
+        assertEquals(selector.getCandidatesCount(), 0, "Equal values should be counted, not copied");
+    }
+
+    @Test
+    void testFewDistinctLarge() throws IndexAccessException {
+        int maxCandidates = 1 << 12;
+        Random rand = new Random(19);
+        double[] values = new double[2_000_000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = rand.nextInt(16);
+        double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+
+        SamplingSelector selector = new SamplingSelector(new ReadOnlyIndex(values),
+                CachedFileDoubleIndex.DEFAULT_PAGE_SIZE, maxCandidates);
+        for (int i = 0; i < 20; i++) {
+            int k = rand.nextInt(values.length);
+            assertEquals(selector.select(k), sortedValues[k], "Incorrect selection value with k=" + k);
+            assertTrue(selector.getCandidatesCount() <= maxCandidates, "Too many candidates kept in memory");
+        }
+    }
+
+    @Test
+    void testPassCount() throws IndexAccessException {
+        final int length = 1_000_000;
+        final long[] reads = new long[1];
+        DoubleIndex index = new ReadOnlyIndex(ValueGenerator.generateRandom(length)) {
+            @Override
+            public double get(int index) throws IndexAccessException {
+                reads[0]++;
+                return super.get(index);
+            }
+        };
+
+        Percentile percentile = new Percentile(new SamplingSelector(index,
+                CachedFileDoubleIndex.DEFAULT_PAGE_SIZE, 1 << 16));
+        percentile.getPercentile(50.0);
+        percentile.getPercentile(99.0);
+
+        assertTrue(reads[0] < 2.2 * length, "Two percentiles took " + (double) reads[0] / length + " passes");
+    }
+
+    @Test
+    void testSmall() throws IndexAccessException {
+        testWith(new double[]{3.0, 1.0, 2.0});
+    }
+
+    @Test
+    void testNaN() throws IndexAccessException {
+        SamplingSelector selector = new SamplingSelector(new ReadOnlyIndex(new double[]{1.0, Double.NaN, 3.0}));
+        assertEquals(selector.select(0), 1.0, "Incorrect selection value with k=0");
+        assertEquals(selector.select(1), 3.0, "Incorrect selection value with k=1");
+        assertTrue(Double.isNaN(selector.select(2)), "NaN should be ordered last");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    void testInvalidCandidatesLimit() {
+        new SamplingSelector(new ReadOnlyIndex(new double[]{1.0}), CachedFileDoubleIndex.DEFAULT_PAGE_SIZE, 0);
+    }
+
+    @Test
+    void testFilePercentiles() throws IOException, IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(200_000);
+        DescriptiveStatistics desc = new DescriptiveStatistics(values);
+
+        try (CachedFileDoubleIndex index = new CachedFileDoubleIndex(testFileName)) {
+            for (double value : values)
+                index.addValue(value);
+            index.completeInsertion();
+
+            Percentile percentile = new Percentile(new SamplingSelector(index,
+                    CachedFileDoubleIndex.DEFAULT_PAGE_SIZE, 1 << 12));
+            for (double p : ValueGenerator.generateByIndex(100)) {
+                assertEquals(percentile.getPercentile(p), desc.getPercentile(p), "Incorrect percentile value");
+            }
+        }
+    }
+
+    @Test
+    void testNoWritesDuringSelection() throws IOException, IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(1_000_000);
+
+        try (CachedFileDoubleIndex index = new CachedFileDoubleIndex(testFileName, 1 << 14, 8)) {
+            for (double value : values)
+                index.addValue(value);
+            index.completeInsertion();
+
+            long pagesWritten = index.getPagesWritten();
+            long pagesRead = index.getPagesRead();
+            Percentile percentile = new Percentile(new SamplingSelector(index, 1 << 14, 1 << 12));
+            percentile.getPercentile(50.0);
+            percentile.getPercentile(99.0);
+
+            assertEquals(index.getPagesWritten(), pagesWritten, "Pages written during selection");
+            assertTrue(index.getPagesRead() - pagesRead > 2 * values.length / (1 << 11),
+                    "Selection should make several passes over pages");
+        }
+    }
+
+    @Test
+    void testReadOnlyArchive() throws IOException, IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(200_000);
+        DescriptiveStatistics desc = new DescriptiveStatistics(values);
+        File archive = new File(testFileName);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archive)))) {
+            for (double value : values)
+                out.writeDouble(value);
+        }
+        assertTrue(archive.setReadOnly(), "Archive can't be made read-only");
+
+        try {
+            try (CachedFileDoubleIndex index = CachedFileDoubleIndex.openReadOnly(testFileName, 1 << 14, 8)) {
+                assertEquals(index.length(), values.length, "Incorrect archive length");
+
+                Percentile percentile = new Percentile(new SamplingSelector(index, 1 << 14, 1 << 12));
+                for (double p : new double[]{1.0, 50.0, 99.0})
+                    assertEquals(percentile.getPercentile(p), desc.getPercentile(p), "Incorrect percentile value");
+                assertEquals(index.getPagesWritten(), 0, "Pages written to read-only archive");
+            }
+            assertTrue(archive.exists(), "Read-only archive removed on close");
+        } finally {
+            Files.delete(archive.toPath());
+        }
+    }
+
+    @Test(timeOut = 60_000)
+    void testReadOnlyArchiveWithNaN() throws IOException, IndexAccessException {
+        double[] values = ValueGenerator.generateRandom(200_000);
+        Random rand = new Random(19);
+        for (int i = 0; i < values.length / 10; i++)
+            values[rand.nextInt(values.length)] = Double.NaN;
+        double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+        File archive = new File(testFileName);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archive)))) {
+            for (double value : values)
+                out.writeDouble(value);
+        }
+        assertTrue(archive.setReadOnly(), "Archive can't be made read-only");
+
+        try (CachedFileDoubleIndex index = CachedFileDoubleIndex.openReadOnly(testFileName, 1 << 14, 8)) {
+            SamplingSelector selector = new SamplingSelector(index, 1 << 14, 1 << 12);
+            for (int i = 0; i < 20; i++) {
+                int k = rand.nextInt(values.length);
+                assertEquals(Double.compare(selector.select(k), sortedValues[k]), 0,
+                        "Incorrect selection value with k=" + k);
+            }
+            assertTrue(Double.isNaN(new Percentile(selector).getPercentile(100.0)), "NaN should be ordered last");
+        } finally {
+            Files.delete(archive.toPath());
+        }
+    }
+
+    private void testWith(double[] values) throws IndexAccessException {
+        double[] sortedValues = Arrays.copyOf(values, values.length);
+        Arrays.sort(sortedValues);
+
+        Selector[] selectors = {
+                new SamplingSelector(new ReadOnlyIndex(values)),
+                new SamplingSelector(new ReadOnlyIndex(values), 1 << 12, 1 << 10)
+        };
+
+        for (Selector selector : selectors) {
+            Random rand = new Random(19);
+            for (int i = 0; i < 200; i++) {
+                int selectionIndex = rand.nextInt(values.length);
+                double actual = selector.select(selectionIndex);
+                assertEquals(actual, sortedValues[selectionIndex],
+                        "Incorrect selection value with k=" + selectionIndex);
+            }
+        }
+    }
+
+    private static class ReadOnlyIndex extends MemoryIndex {
+        ReadOnlyIndex(double[] values) {
+            super(values);
+        }
+
+        @Override
+        public void set(int index, double value) {
+            throw new UnsupportedOperationException("Index is read-only");
+        }
+    }
+}
@@ -6,6 +6,39 @@ class ValueGenerator {
 
     private static final int RANDOM_SEED = 19;
 
+    enum Distribution {
+        UNIFORM {
+            @Override
+            double next(Random rand, int index) {
+                return rand.nextDouble();
+            }
+        },
+        GAUSSIAN {
+            @Override
+            double next(Random rand, int index) {
+                return rand.nextGaussian();
+            }
+        },
+        SORTED {
+            @Override
+            double next(Random rand, int index) {
+                return index;
+            }
+        },
+        DUPLICATES {
+            @Override
+            double next(Random rand, int index) {
+                return rand.nextInt(16);
+            }
+        };
+
+        abstract double next(Random rand, int index);
+    }
+
+    static Random createRandom() {
+        return new Random(RANDOM_SEED);
+    }
+
     static double[] generateRandom(int count) {
         return generateRandom(count, 1.0);
     }